@@ -7,6 +7,9 @@ import com.parallelsymmetry.utility.log.Log;
 import purejavacomm.*;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.*;
 
@@ -17,8 +20,6 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 
 	private static final int RETRY_COUNT = 10;
 
-	private static final int DEFAULT_BUFFER_SIZE = 256;
-
 	private static boolean serialCommAvailable;
 
 	private CommPortIdentifier identifier;
@@ -31,11 +32,25 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 
 	private OutputStream output;
 
-	private PipedOutputStream serialOutput;
+	private SerialReceiver receiver;
+
+	private Path exportPath;
+
+	private int exportCapacity = SerialRingWriter.DEFAULT_CAPACITY;
+
+	private boolean exportLossy;
+
+	private SerialRingWriter export;
+
+	private final Object stallLock = new Object();
+
+	private long inboundStallTime;
+
+	private long droppedCount;
 
-	private SerialInputStream serialInput;
+	private long outboundStallStart;
 
-	private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+	private long outboundStallTime;
 
 	public SerialAgent() {
 		this( null );
@@ -57,7 +72,11 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 	}
 
 	public void configure( String name, int baud, int bits, int parity, int stop ) {
-		this.settings = new SerialSettings( name, baud, bits, parity, stop );
+		configure( name, baud, bits, parity, stop, SerialPort.FLOWCONTROL_NONE );
+	}
+
+	public void configure( String name, int baud, int bits, int parity, int stop, int flow ) {
+		this.settings = new SerialSettings( name, baud, bits, parity, stop, flow );
 	}
 
 	public void configure( Parameters parameters ) throws ConfigurationException {
@@ -70,23 +89,137 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 			int bits = SerialSettings.parseData( parameters.get( "comm.bits", "8" ) );
 			int stop = SerialSettings.parseStop( parameters.get( "comm.stop", "1" ) );
 			int parity = SerialSettings.parseParity( parameters.get( "comm.parity", "N" ) );
-			configure( name, rate, bits, parity, stop );
+			int flow = SerialSettings.parseFlow( parameters.get( "comm.flow", "N" ) );
+			configure( name, rate, bits, parity, stop, flow );
+
+			String export = parameters.get( "comm.export", null );
+			if( export != null ) {
+				int capacity = Integer.parseInt( parameters.get( "comm.export.size", String.valueOf( SerialRingWriter.DEFAULT_CAPACITY ) ) );
+				setExport( Paths.get( export ), capacity, Boolean.parseBoolean( parameters.get( "comm.export.lossy", "false" ) ) );
+			}
 		} catch( NoSuchPortException exception ) {
 			throw new ConfigurationException( "No such port: " + name, exception );
-		} catch( ParseException exception ) {
+		} catch( ParseException | IllegalArgumentException exception ) {
 			throw new ConfigurationException( exception );
 		}
 	}
 
+	/**
+	 * Publish the inbound serial data to a memory-mapped ring file that other
+	 * local processes can tail with a {@link SerialRingReader}. Takes effect the
+	 * next time the port is opened. The input stream is not affected, so the
+	 * export only advances as fast as the input stream is read.
+	 *
+	 * @param path The ring file or null to stop exporting
+	 * @param capacity The ring data size, must be a power of two
+	 */
+	public void setExport( Path path, int capacity ) {
+		setExport( path, capacity, false );
+	}
+
+	/**
+	 * Publish the inbound serial data to a memory-mapped ring file. In lossy mode
+	 * the port is always drained into the ring, the device is never held off for
+	 * the input stream, and data that does not fit in the input stream buffer is
+	 * dropped, see {@link #getDroppedCount()}.
+	 *
+	 * @param path The ring file or null to stop exporting
+	 * @param capacity The ring data size, must be a power of two
+	 * @param lossy True if the export must not wait for the input stream
+	 */
+	public void setExport( Path path, int capacity, boolean lossy ) {
+		if( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) throw new IllegalArgumentException( "Capacity must be a power of two: " + capacity );
+		this.exportPath = path;
+		this.exportCapacity = capacity;
+		this.exportLossy = lossy;
+	}
+
+	public Path getExportPath() {
+		return exportPath;
+	}
+
+	public boolean isExportLossy() {
+		return exportLossy;
+	}
+
 	public SerialPort getSerialPort() {
 		return port;
 	}
 
+	public SerialSettings getSerialSettings() {
+		return settings;
+	}
+
+	/**
+	 * Send a region of a file straight to the port, see {@link SerialTransfer}.
+	 * Other writes to the port must not happen during the transfer.
+	 *
+	 * @param rate The device rate in bytes per second or zero for the line rate
+	 * @param burst The device buffer size or zero if unknown
+	 * @param listener The progress listener, may be null
+	 * @return The completed transfer
+	 */
+	public SerialTransfer transfer( FileChannel channel, long position, long count, double rate, int burst, SerialTransferListener listener ) throws IOException {
+		if( output == null ) throw new IOException( "Serial port not open: " + getName() );
+		if( rate <= 0 || rate > settings.getByteRate() ) rate = settings.getByteRate();
+		// With outbound flow control the device throttles the port itself.
+		if( settings.isOutboundFlowControl() ) burst = 0;
+		SerialTransfer transfer = new SerialTransfer( output, rate, burst );
+		transfer.setListener( listener );
+		transfer.send( channel, position, count );
+		Log.write( Log.DEBUG, getName(), " Transferred " + transfer.getSent() + " bytes at " + (long)transfer.getThroughput() + " bytes/s." );
+		return transfer;
+	}
+
+	/**
+	 * Get the total time the agent held off the device because its receive
+	 * buffer was full.
+	 *
+	 * @return The inbound stall time in nanoseconds
+	 */
+	public long getInboundStallTime() {
+		synchronized( stallLock ) {
+			SerialReceiver receiver = this.receiver;
+			return inboundStallTime + (receiver == null ? 0 : receiver.getStallTime());
+		}
+	}
+
+	/**
+	 * Get the number of exported bytes that were dropped from the input stream
+	 * in lossy export mode because it was not read fast enough.
+	 *
+	 * @return The dropped byte count
+	 */
+	public long getDroppedCount() {
+		synchronized( stallLock ) {
+			SerialReceiver receiver = this.receiver;
+			return droppedCount + (receiver == null ? 0 : receiver.getDropped());
+		}
+	}
+
+	/**
+	 * Get the total time the device held off the agent by dropping CTS. Software
+	 * flow control from the device is handled by the port driver and is not
+	 * included.
+	 *
+	 * @return The outbound stall time in nanoseconds
+	 */
+	public long getOutboundStallTime() {
+		synchronized( stallLock ) {
+			return outboundStallTime + (outboundStallStart == 0 ? 0 : System.nanoTime() - outboundStallStart);
+		}
+	}
+
 	@Override
 	public void serialEvent( SerialPortEvent event ) {
 		switch( event.getEventType() ) {
 			case SerialPortEvent.DATA_AVAILABLE: {
-				dataAvailable();
+				SerialReceiver receiver = this.receiver;
+				if( receiver != null ) receiver.signal();
+				break;
+			}
+			case SerialPortEvent.CTS: {
+				clearToSend( event.getNewValue() );
 				break;
 			}
 		}
@@ -124,10 +257,11 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 
 	@Override
 	protected void connect() throws Exception {
-		serialOutput = new PipedOutputStream();
-		serialInput = new SerialInputStream( serialOutput );
-		setRealInputStream( serialInput );
+		if( port == null ) throw new IOException( "Serial port is not open: " + getName() );
+		receiver = new SerialReceiver( getName() + " receiver", input, output, settings, port::setRTS, export, exportLossy );
+		setRealInputStream( receiver.getInputStream() );
 		setRealOutputStream( new SerialOutputStream( output ) );
+		receiver.start();
 	}
 
 	@Override
@@ -136,6 +270,15 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 		if( output != null ) output.close();
 		setRealOutputStream( null );
 
+		if( receiver != null ) {
+			receiver.stop();
+			synchronized( stallLock ) {
+				inboundStallTime += receiver.getStallTime();
+				droppedCount += receiver.getDropped();
+				receiver = null;
+			}
+		}
+
 		InputStream input = getRealInputStream();
 		if( input != null ) input.close();
 		setRealInputStream( null );
@@ -155,12 +298,13 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 
 			setSerialSettings( port, settings );
 			try {
-				port.setFlowControlMode( SerialPort.FLOWCONTROL_NONE );
+				port.setFlowControlMode( settings.getFlow() );
 			} catch( UnsupportedCommOperationException exception ) {
 				throw new IOException( exception );
 			}
-			port.setDTR( false );
-			port.setRTS( false );
+			boolean hardware = ( settings.getFlow() & SerialSettings.FLOWCONTROL_RTSCTS ) != 0;
+			port.setDTR( hardware );
+			port.setRTS( hardware );
 
 			SerialSettings actualSettings = new SerialSettings( port );
 			if( !actualSettings.equals( settings ) ) throw new IOException( "Actual port settings are not requested settings: "
@@ -171,6 +315,8 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 			input = port.getInputStream();
 			output = port.getOutputStream();
 
+			if( exportPath != null ) export = new SerialRingWriter( exportPath, exportCapacity );
+
 			try {
 				port.addEventListener( this );
 			} catch( TooManyListenersException exception ) {
@@ -178,6 +324,11 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 			}
 			port.notifyOnDataAvailable( true );
 
+			if( ( settings.getFlow() & SerialPort.FLOWCONTROL_RTSCTS_OUT ) != 0 ) {
+				port.notifyOnCTS( true );
+				clearToSend( port.isCTS() );
+			}
+
 			Log.write( Log.TRACE, getName(), " Serial port open:  [" + actualSettings.toString() + "]." );
 		} catch( NoSuchPortException exception ) {
 			throw new IOException( "Port does not exist: " + settings.getName(), exception );
@@ -186,15 +337,14 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 		}
 	}
 
-	private void dataAvailable() {
-		int read;
-		try {
-			while( input.available() > 0 && ( read = input.read( buffer ) ) > -1 ) {
-				serialOutput.write( buffer, 0, read );
-				serialOutput.flush();
+	private void clearToSend( boolean clear ) {
+		synchronized( stallLock ) {
+			if( clear && outboundStallStart != 0 ) {
+				outboundStallTime += System.nanoTime() - outboundStallStart;
+				outboundStallStart = 0;
+			} else if( !clear && outboundStallStart == 0 ) {
+				outboundStallStart = System.nanoTime();
 			}
-		} catch( IOException exception ) {
-			serialInput.setException( exception );
 		}
 	}
 
@@ -205,6 +355,12 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 			// Intentionally ignore exception.
 		}
 
+		// Close an open stall interval so it does not count while disconnected.
+		clearToSend( true );
+
+		if( export != null ) export.close();
+		export = null;
+
 		if( output != null ) output.close();
 		if( input != null ) input.close();
 		if( port != null ) port.close();
@@ -236,42 +392,6 @@ public class SerialAgent extends PipeAgent implements SerialPortEventListener {
 		}
 	}
 
-	private class SerialInputStream extends PipedInputStream {
-
-		private IOException exception;
-
-		public SerialInputStream( PipedOutputStream output ) throws IOException {
-			super( output, DEFAULT_BUFFER_SIZE );
-		}
-
-		@Override
-		public int read() throws IOException {
-			checkException();
-			return super.read();
-		}
-
-		@Override
-		public int read( byte[] buffer ) throws IOException {
-			checkException();
-			return super.read( buffer );
-		}
-
-		@Override
-		public int read( byte[] buffer, int offset, int length ) throws IOException {
-			checkException();
-			return super.read( buffer, offset, length );
-		}
-
-		public void setException( IOException exception ) {
-			this.exception = exception;
-		}
-
-		private void checkException() throws IOException {
-			if( exception != null ) throw exception;
-		}
-
-	}
-
 	private class SerialOutputStream extends OutputStream {
 
 		private OutputStream output;
@@ -0,0 +1,124 @@
+package com.parallelsymmetry.utility.comm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A slave device polled by a {@link SerialBusScheduler} on a shared half-duplex
+ * bus. Each device is polled once per period and its deadline is the end of the
+ * period. Devices with the same deadline are polled in priority order.
+ *
+ * @author mvsoder
+ */
+public abstract class SerialBusDevice {
+
+	private String name;
+
+	private long period;
+
+	private int priority;
+
+	private long timeout;
+
+	long release;
+
+	private volatile long lastResponse;
+
+	private volatile long polls;
+
+	private volatile long timeouts;
+
+	/**
+	 * @param name The device name
+	 * @param period The poll period in milliseconds
+	 * @param priority The priority for devices with the same deadline, higher first
+	 * @param timeout The time to wait for the first response byte in milliseconds
+	 */
+	public SerialBusDevice( String name, long period, int priority, long timeout ) {
+		if( period <= 0 ) throw new IllegalArgumentException( "Period must be positive: " + period );
+		if( timeout <= 0 ) throw new IllegalArgumentException( "Timeout must be positive: " + timeout );
+		this.name = name;
+		this.period = TimeUnit.MILLISECONDS.toNanos( period );
+		this.priority = priority;
+		this.timeout = TimeUnit.MILLISECONDS.toNanos( timeout );
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The poll period in nanoseconds
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return The response timeout in nanoseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Get the end of the current poll period.
+	 *
+	 * @return The deadline in {@link System#nanoTime()} time
+	 */
+	public long getDeadline() {
+		return release + period;
+	}
+
+	public long getPollCount() {
+		return polls;
+	}
+
+	public long getTimeoutCount() {
+		return timeouts;
+	}
+
+	/**
+	 * Get the age of the last response from the device.
+	 *
+	 * @return The staleness in nanoseconds or -1 if the device never responded
+	 */
+	public long getStaleness() {
+		long last = lastResponse;
+		return last == 0 ? -1 : System.nanoTime() - last;
+	}
+
+	/**
+	 * Get the request to send for the next poll.
+	 *
+	 * @return The request frame
+	 */
+	protected abstract byte[] getRequest();
+
+	/**
+	 * Check if the response is complete. When this returns false the response
+	 * is complete after the bus is silent for the turnaround time.
+	 *
+	 * @return True if the response is complete
+	 */
+	protected boolean isComplete( byte[] response, int length ) {
+		return false;
+	}
+
+	protected abstract void handleResponse( byte[] response, int length );
+
+	protected void handleTimeout() {}
+
+	void polled( boolean responded, long time ) {
+		polls++;
+		if( responded ) {
+			lastResponse = time;
+		} else {
+			timeouts++;
+		}
+	}
+
+}
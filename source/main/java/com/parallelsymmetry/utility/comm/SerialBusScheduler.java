@@ -0,0 +1,256 @@
+package com.parallelsymmetry.utility.comm;
+
+import com.parallelsymmetry.utility.agent.Agent;
+import com.parallelsymmetry.utility.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the turn-taking on a multi-drop half-duplex bus, such as RS-485, and
+ * polls each {@link SerialBusDevice} in earliest deadline first order. Once
+ * started all traffic on the bus must go through the scheduler.
+ * <p>
+ * Polls run back-to-back separated only by the turnaround time, which is 3.5
+ * character times at the port byte rate. A response ends when the device
+ * reports it complete or when the bus is silent for the turnaround time. A
+ * device that does not respond before its timeout is skipped until its next
+ * period. Devices with equal deadlines are polled in priority order.
+ *
+ * @author mvsoder
+ */
+public class SerialBusScheduler extends Agent {
+
+	private static final int MAX_FRAME_SIZE = 256;
+
+	private static final long MAX_IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+	private static final long MIN_CHECK_INTERVAL = TimeUnit.MICROSECONDS.toNanos( 100 );
+
+	private static final long ERROR_RETRY_DELAY = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+	private InputStream input;
+
+	private OutputStream output;
+
+	private long characterTime;
+
+	private long turnaround;
+
+	private List<SerialBusDevice> devices = new CopyOnWriteArrayList<SerialBusDevice>();
+
+	private byte[] buffer = new byte[MAX_FRAME_SIZE];
+
+	private Thread thread;
+
+	private volatile long start;
+
+	private volatile long busy;
+
+	public SerialBusScheduler( String name, InputStream input, OutputStream output, SerialSettings settings ) {
+		super( name );
+		this.input = input;
+		this.output = output;
+		this.characterTime = (long)Math.ceil( TimeUnit.SECONDS.toNanos( 1 ) / settings.getByteRate() );
+		this.turnaround = characterTime * 7 / 2;
+	}
+
+	/**
+	 * Add a device to the bus. The first release is aligned to a multiple of the
+	 * device period so devices with the same period share deadlines and are
+	 * ordered by priority, no matter when they were added.
+	 *
+	 * @param device The device to poll
+	 */
+	public void addDevice( SerialBusDevice device ) {
+		long now = System.nanoTime();
+		device.release = now - Math.floorMod( now, device.getPeriod() );
+		devices.add( device );
+	}
+
+	public void removeDevice( SerialBusDevice device ) {
+		devices.remove( device );
+	}
+
+	public List<SerialBusDevice> getDevices() {
+		return List.copyOf( devices );
+	}
+
+	/**
+	 * Get the silent time between frames on the bus.
+	 *
+	 * @return The turnaround time in nanoseconds
+	 */
+	public long getTurnaround() {
+		return turnaround;
+	}
+
+	/**
+	 * Get the fraction of time the bus was busy with polls since the scheduler
+	 * started.
+	 *
+	 * @return The bus utilization from 0 to 1
+	 */
+	public double getUtilization() {
+		long elapsed = System.nanoTime() - start;
+		return start == 0 || elapsed <= 0 ? 0 : Math.min( 1, (double)busy / elapsed );
+	}
+
+	@Override
+	protected void startAgent() throws Exception {
+		start = System.nanoTime();
+		busy = 0;
+		thread = new Thread( this::schedule, getName() );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	@Override
+	protected void stopAgent() throws Exception {
+		if( thread == null ) return;
+		thread.interrupt();
+		thread.join();
+		thread = null;
+	}
+
+	/**
+	 * Select the released device with the earliest deadline.
+	 *
+	 * @param now The current time
+	 * @return The device to poll or null if no device is released
+	 */
+	SerialBusDevice next( long now ) {
+		SerialBusDevice next = null;
+		for( SerialBusDevice device : devices ) {
+			if( device.release > now ) continue;
+			if( next == null || device.getDeadline() < next.getDeadline() || ( device.getDeadline() == next.getDeadline() && device.getPriority() > next.getPriority() ) ) next = device;
+		}
+		return next;
+	}
+
+	/**
+	 * Poll a device and advance it to its next period. A device whose callbacks
+	 * throw an exception is counted as timed out.
+	 *
+	 * @return True if the device responded
+	 */
+	boolean poll( SerialBusDevice device ) throws IOException, InterruptedException {
+		long begin = System.nanoTime();
+		boolean responded = false;
+		try {
+			int length = exchange( device );
+			if( length < 0 ) {
+				Log.write( Log.DEBUG, getName(), " Device poll timeout: " + device.getName() );
+				device.handleTimeout();
+			} else {
+				device.handleResponse( buffer, length );
+				responded = true;
+			}
+		} catch( RuntimeException exception ) {
+			Log.write( exception, getName(), " Device poll failed: " + device.getName() );
+		} finally {
+			long now = System.nanoTime();
+			device.polled( responded, now );
+			advance( device, now );
+			busy += now - begin;
+		}
+		return responded;
+	}
+
+	/**
+	 * Send the request to the device and read the response.
+	 *
+	 * @return The response length or -1 if the device timed out
+	 */
+	private int exchange( SerialBusDevice device ) throws IOException, InterruptedException {
+		long begin = System.nanoTime();
+
+		// Discard late responses from previous polls.
+		int stale = input.available();
+		if( stale > 0 ) input.skip( stale );
+
+		byte[] request = device.getRequest();
+		output.write( request );
+		output.flush();
+
+		long now = System.nanoTime();
+		long sent = begin + request.length * characterTime;
+		long deadline = Math.max( now, sent ) + device.getTimeout();
+		long last = 0;
+		int length = 0;
+
+		while( true ) {
+			int count = input.available();
+			if( count > 0 ) {
+				length += input.read( buffer, length, Math.min( count, buffer.length - length ) );
+				last = System.nanoTime();
+				if( length == buffer.length || device.isComplete( buffer, length ) ) break;
+			} else if( length > 0 && System.nanoTime() - last >= turnaround ) {
+				break;
+			} else if( length == 0 && System.nanoTime() >= deadline ) {
+				return -1;
+			} else {
+				TimeUnit.NANOSECONDS.sleep( Math.max( MIN_CHECK_INTERVAL, characterTime ) );
+			}
+		}
+
+		// Leave the bus silent for the turnaround before the next request.
+		long gap = last + turnaround - System.nanoTime();
+		if( gap > 0 ) TimeUnit.NANOSECONDS.sleep( gap );
+
+		return length;
+	}
+
+	/**
+	 * Move the device release to the first period boundary after now, skipping
+	 * any missed periods instead of polling a late device back-to-back.
+	 */
+	private void advance( SerialBusDevice device, long now ) {
+		long period = device.getPeriod();
+		device.release += period;
+		if( device.release <= now ) device.release += ( ( now - device.release ) / period + 1 ) * period;
+	}
+
+	/**
+	 * Poll devices until interrupted. A failed port read or write is logged and
+	 * the scheduler waits before continuing so a persistent failure does not
+	 * flood the log.
+	 */
+	private void schedule() {
+		while( !Thread.currentThread().isInterrupted() ) {
+			try {
+				long now = System.nanoTime();
+				SerialBusDevice device = next( now );
+				if( device == null ) {
+					idle( now );
+				} else {
+					poll( device );
+				}
+			} catch( InterruptedException exception ) {
+				return;
+			} catch( IOException exception ) {
+				Log.write( exception, getName() );
+				try {
+					TimeUnit.NANOSECONDS.sleep( ERROR_RETRY_DELAY );
+				} catch( InterruptedException interrupted ) {
+					return;
+				}
+			} catch( RuntimeException exception ) {
+				Log.write( exception, getName() );
+			}
+		}
+	}
+
+	private void idle( long now ) throws InterruptedException {
+		long wait = MAX_IDLE_WAIT;
+		for( SerialBusDevice device : devices ) {
+			wait = Math.min( wait, device.release - now );
+		}
+		if( wait > 0 ) TimeUnit.NANOSECONDS.sleep( wait );
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.parallelsymmetry.utility.comm;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that paces bytes to a steady rate while allowing a burst up
+ * to the bucket size, usually the amount the device can buffer.
+ *
+ * @author mvsoder
+ */
+public class SerialPacer {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos( 1 );
+
+	private double rate;
+
+	private int size;
+
+	private double tokens;
+
+	private long time;
+
+	/**
+	 * @param rate The sustained rate in bytes per second
+	 * @param size The largest burst in bytes
+	 */
+	public SerialPacer( double rate, int size ) {
+		if( rate <= 0 ) throw new IllegalArgumentException( "Rate must be positive: " + rate );
+		if( size <= 0 ) throw new IllegalArgumentException( "Size must be positive: " + size );
+		this.rate = rate;
+		this.size = size;
+		this.tokens = size;
+		this.time = System.nanoTime();
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Wait until the count of bytes may be sent.
+	 *
+	 * @param count The number of bytes, no larger than the bucket size
+	 * @throws InterruptedIOException If interrupted while waiting
+	 */
+	public void acquire( int count ) throws InterruptedIOException {
+		long delay = delay( count, System.nanoTime() );
+		if( delay <= 0 ) return;
+		try {
+			TimeUnit.NANOSECONDS.sleep( delay );
+		} catch( InterruptedException exception ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while pacing" );
+		}
+	}
+
+	/**
+	 * Take the count of bytes from the bucket and return how long to wait before
+	 * they may be sent.
+	 *
+	 * @return The delay in nanoseconds
+	 */
+	long delay( int count, long now ) {
+		tokens = Math.min( size, tokens + (now - time) * rate / NANOS_PER_SECOND );
+		time = now;
+		tokens -= count;
+		return tokens >= 0 ? 0 : (long)Math.ceil( -tokens * NANOS_PER_SECOND / rate );
+	}
+
+}
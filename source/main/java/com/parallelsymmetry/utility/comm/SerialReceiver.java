@@ -0,0 +1,327 @@
+package com.parallelsymmetry.utility.comm;
+
+import purejavacomm.SerialPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Moves data received from the port into the buffer read by the application.
+ * All reads from the port happen on one drain thread owned by the receiver.
+ * The port event thread and the buffer readers only signal the drain thread.
+ * The buffer does not track reader or writer threads, so any number of
+ * application threads may take turns reading it.
+ * <p>
+ * When the buffer is full the rest of the data is left in the port. If inbound
+ * flow control is configured the device is held off, by dropping RTS or by
+ * sending XOFF, once the buffer reaches the high water mark and released once
+ * readers drain it below the low water mark. A failure while draining is
+ * reported once to the next reader after the data already buffered.
+ * <p>
+ * When exporting to a ring file everything drained from the port is also
+ * written to the ring. In lossy mode the ring is the primary consumer instead.
+ * The port is always drained into the ring and the device is never held off
+ * for the buffer. Data that does not fit in the buffer is dropped and counted.
+ *
+ * @author mvsoder
+ */
+class SerialReceiver {
+
+	static final int BUFFER_SIZE = 256;
+
+	static final int HIGH_WATER = BUFFER_SIZE * 3 / 4;
+
+	static final int LOW_WATER = BUFFER_SIZE / 4;
+
+	static final int XON = 0x11;
+
+	static final int XOFF = 0x13;
+
+	private String name;
+
+	private InputStream input;
+
+	private OutputStream output;
+
+	private SerialSettings settings;
+
+	private Consumer<Boolean> rts;
+
+	private SerialRingWriter export;
+
+	private boolean lossy;
+
+	private ReceiverInputStream pipeInput;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+
+	private Thread thread;
+
+	private boolean signaled;
+
+	private volatile boolean backlog;
+
+	private volatile boolean throttled;
+
+	private volatile long dropped;
+
+	private long stallStart;
+
+	private long stallTime;
+
+	/**
+	 * @param name The name of the drain thread
+	 * @param input The port input
+	 * @param output The port output, used to send XON and XOFF
+	 * @param settings The port settings
+	 * @param rts Sets the port RTS line
+	 * @param export The ring file to export to, may be null
+	 * @param lossy True to drop data the buffer cannot take instead of leaving it in the port, only used with an export
+	 */
+	SerialReceiver( String name, InputStream input, OutputStream output, SerialSettings settings, Consumer<Boolean> rts, SerialRingWriter export, boolean lossy ) {
+		this.name = name;
+		this.input = input;
+		this.output = output;
+		this.settings = settings;
+		this.rts = rts;
+		this.export = export;
+		this.lossy = export != null && lossy;
+		this.pipeInput = new ReceiverInputStream();
+	}
+
+	InputStream getInputStream() {
+		return pipeInput;
+	}
+
+	boolean isThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * Get the number of bytes exported but dropped because the buffer was full.
+	 *
+	 * @return The dropped byte count
+	 */
+	long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Get the total time the device was held off by this receiver.
+	 *
+	 * @return The stall time in nanoseconds
+	 */
+	synchronized long getStallTime() {
+		return stallTime + (throttled ? System.nanoTime() - stallStart : 0);
+	}
+
+	void start() {
+		thread = new Thread( this::run, name );
+		thread.setDaemon( true );
+		thread.start();
+		signal();
+	}
+
+	void stop() throws InterruptedException {
+		if( thread != null ) {
+			thread.interrupt();
+			thread.join();
+			thread = null;
+		}
+
+		synchronized( this ) {
+			if( throttled ) stallTime += System.nanoTime() - stallStart;
+			throttled = false;
+		}
+
+		pipeInput.finish();
+	}
+
+	/**
+	 * Wake the drain thread, usually because the port has data available.
+	 */
+	synchronized void signal() {
+		signaled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Move as much data from the port to the buffer as the buffer will take and
+	 * update the flow control state. Only called by the drain thread, or by
+	 * tests in place of it.
+	 */
+	void drain() throws IOException {
+		do {
+			int count;
+			while( ( count = Math.min( input.available(), buffer.length ) ) > 0 ) {
+				int free = BUFFER_SIZE - pipeInput.available();
+
+				// Unless lossy the buffer is the primary consumer so leave the rest in the port.
+				if( !lossy ) {
+					if( free == 0 ) break;
+					count = Math.min( count, free );
+				}
+
+				int read = input.read( buffer, 0, count );
+				if( read < 0 ) break;
+				dropped += read - pipeInput.write( buffer, 0, read );
+				if( export != null ) export.write( buffer, 0, read );
+			}
+
+			backlog = input.available() > 0;
+
+			int fill = pipeInput.available();
+			if( fill >= HIGH_WATER && !lossy ) {
+				setThrottled( true );
+			} else if( fill <= LOW_WATER ) {
+				setThrottled( false );
+			}
+
+			// A reader may have drained the pipe before the backlog was published.
+		} while( backlog && pipeInput.available() <= LOW_WATER );
+	}
+
+	private void run() {
+		while( !Thread.currentThread().isInterrupted() ) {
+			try {
+				awaitSignal();
+				drain();
+			} catch( InterruptedException exception ) {
+				return;
+			} catch( IOException exception ) {
+				pipeInput.fail( exception );
+			}
+		}
+	}
+
+	private synchronized void awaitSignal() throws InterruptedException {
+		while( !signaled ) wait();
+		signaled = false;
+	}
+
+	/**
+	 * Called after the buffer is read to resume moving data from the port.
+	 */
+	private void consumed() throws IOException {
+		if( ( backlog || throttled ) && pipeInput.available() <= LOW_WATER ) signal();
+	}
+
+	private void setThrottled( boolean throttled ) throws IOException {
+		if( this.throttled == throttled || !settings.isInboundFlowControl() ) return;
+
+		if( ( settings.getFlow() & SerialPort.FLOWCONTROL_RTSCTS_IN ) != 0 ) rts.accept( !throttled );
+		if( ( settings.getFlow() & SerialPort.FLOWCONTROL_XONXOFF_IN ) != 0 ) {
+			output.write( throttled ? XOFF : XON );
+			output.flush();
+		}
+
+		synchronized( this ) {
+			long now = System.nanoTime();
+			if( throttled ) {
+				stallStart = now;
+			} else {
+				stallTime += now - stallStart;
+			}
+			this.throttled = throttled;
+		}
+	}
+
+	/**
+	 * A bounded byte ring read by the application. Only the drain thread writes
+	 * to it and writes never block.
+	 */
+	private class ReceiverInputStream extends InputStream {
+
+		private byte[] data = new byte[BUFFER_SIZE];
+
+		private int head;
+
+		private int count;
+
+		private boolean closed;
+
+		private IOException exception;
+
+		/**
+		 * Copy as many bytes as fit into the buffer.
+		 *
+		 * @return The number of bytes copied
+		 */
+		synchronized int write( byte[] buffer, int offset, int length ) {
+			if( closed ) return 0;
+			int total = Math.min( length, data.length - count );
+			int tail = (head + count) % data.length;
+			int first = Math.min( total, data.length - tail );
+			System.arraycopy( buffer, offset, data, tail, first );
+			System.arraycopy( buffer, offset + first, data, 0, total - first );
+			count += total;
+			notifyAll();
+			return total;
+		}
+
+		synchronized void fail( IOException exception ) {
+			this.exception = exception;
+			notifyAll();
+		}
+
+		synchronized void finish() {
+			closed = true;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized int available() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] bite = new byte[1];
+			return read( bite, 0, 1 ) < 0 ? -1 : bite[0] & 0xff;
+		}
+
+		@Override
+		public int read( byte[] buffer, int offset, int length ) throws IOException {
+			if( length == 0 ) return 0;
+
+			int result;
+			synchronized( this ) {
+				try {
+					while( count == 0 && exception == null && !closed ) wait();
+				} catch( InterruptedException exception ) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException( "Interrupted while reading" );
+				}
+
+				if( count == 0 ) {
+					IOException failure = exception;
+					exception = null;
+					if( failure != null ) throw failure;
+					return -1;
+				}
+
+				result = Math.min( length, count );
+				int first = Math.min( result, data.length - head );
+				System.arraycopy( data, head, buffer, offset, first );
+				System.arraycopy( data, 0, buffer, offset + first, result - first );
+				head = (head + result) % data.length;
+				count -= result;
+			}
+
+			consumed();
+			return result;
+		}
+
+		@Override
+		public synchronized void close() {
+			closed = true;
+			count = 0;
+			notifyAll();
+		}
+
+	}
+
+}
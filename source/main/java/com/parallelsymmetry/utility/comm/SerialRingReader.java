@@ -0,0 +1,181 @@
+package com.parallelsymmetry.utility.comm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.parallelsymmetry.utility.comm.SerialRingWriter.*;
+
+/**
+ * Tails a ring file published by a {@link SerialRingWriter}, possibly in
+ * another process. Reads copy directly from the mapped file and never block.
+ * If the writer laps the reader the unread bytes are skipped and counted as
+ * lost. If the writer reinitializes the file the reader fails and must be
+ * opened again.
+ *
+ * @author mvsoder
+ */
+public class SerialRingReader implements Closeable {
+
+	private FileChannel channel;
+
+	private MappedByteBuffer map;
+
+	private int capacity;
+
+	private int mask;
+
+	private int generation;
+
+	private long position;
+
+	private long lost;
+
+	/**
+	 * Open the ring file and start reading at the current commit cursor.
+	 *
+	 * @param path The ring file
+	 * @throws IOException If the file is not a ring file
+	 */
+	public SerialRingReader( Path path ) throws IOException {
+		channel = FileChannel.open( path, StandardOpenOption.READ );
+		try {
+			if( channel.size() < HEADER_SIZE ) throw new IOException( "Not a ring file: " + path );
+
+			map = channel.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE );
+			map.order( ByteOrder.LITTLE_ENDIAN );
+			if( map.getInt( MAGIC_OFFSET ) != MAGIC ) throw new IOException( "Not a ring file: " + path );
+			if( map.getInt( VERSION_OFFSET ) != VERSION ) throw new IOException( "Unsupported ring file version: " + map.getInt( VERSION_OFFSET ) );
+			capacity = map.getInt( CAPACITY_OFFSET );
+			if( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) throw new IOException( "Invalid ring file capacity: " + capacity );
+			if( channel.size() < HEADER_SIZE + (long)capacity ) throw new IOException( "Truncated ring file: " + path );
+			mask = capacity - 1;
+			generation = map.getInt( GENERATION_OFFSET );
+
+			map = channel.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + capacity );
+			map.order( ByteOrder.LITTLE_ENDIAN );
+			position = getCursor();
+			checkGeneration();
+		} catch( IOException exception ) {
+			close();
+			throw exception;
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Get the sequence number after the last byte published by the writer.
+	 *
+	 * @return The commit cursor
+	 */
+	public long getCursor() {
+		return (long)LONG.getAcquire( map, COMMIT_OFFSET );
+	}
+
+	/**
+	 * Get the sequence number of the next byte to be read.
+	 *
+	 * @return The read position
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Set the sequence number of the next byte to be read. Positions older than
+	 * the ring capacity are treated as lost on the next read.
+	 *
+	 * @param position The read position
+	 */
+	public void setPosition( long position ) {
+		this.position = position;
+	}
+
+	/**
+	 * Get the number of bytes skipped because the writer overran this reader.
+	 *
+	 * @return The lost byte count
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	public int available() throws IOException {
+		if( map == null ) throw new IOException( "Ring reader closed." );
+		long cursor = getCursor();
+		checkGeneration();
+		return (int)Math.min( capacity, Math.max( 0, cursor - position ) );
+	}
+
+	public int read( byte[] buffer ) throws IOException {
+		return read( buffer, 0, buffer.length );
+	}
+
+	/**
+	 * Copy up to length published bytes into the buffer.
+	 *
+	 * @return The number of bytes read, zero if no bytes are available
+	 * @throws IOException If the writer reinitialized the ring file
+	 */
+	public int read( byte[] buffer, int offset, int length ) throws IOException {
+		if( map == null ) throw new IOException( "Ring reader closed." );
+
+		while( true ) {
+			long cursor = getCursor();
+			checkGeneration();
+			if( cursor - position > capacity ) skip( cursor - capacity );
+
+			int count = (int)Math.min( length, cursor - position );
+			if( count <= 0 ) return 0;
+
+			int index = (int)(position & mask);
+			int first = Math.min( count, capacity - index );
+			map.get( HEADER_SIZE + index, buffer, offset, first );
+			if( first < count ) map.get( HEADER_SIZE, buffer, offset + first, count - first );
+
+			// The copy is only valid if the writer did not start overwriting it.
+			VarHandle.loadLoadFence();
+			long reserve = (long)LONG.getVolatile( map, RESERVE_OFFSET );
+			checkGeneration();
+			if( reserve - position <= capacity ) {
+				position += count;
+				return count;
+			}
+			skip( reserve - capacity );
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		map = null;
+		if( channel != null ) channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Check that the writer has not reinitialized the file since it was opened.
+	 * The writer clears the magic number before changing the header.
+	 */
+	private void checkGeneration() throws IOException {
+		if( (int)INT.getAcquire( map, MAGIC_OFFSET ) != MAGIC || (int)INT.getAcquire( map, GENERATION_OFFSET ) != generation ) throw new IOException( "Ring file was reset." );
+	}
+
+	private void skip( long target ) {
+		if( target <= position ) return;
+		lost += target - position;
+		position = target;
+	}
+
+}
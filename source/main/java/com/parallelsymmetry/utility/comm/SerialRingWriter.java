@@ -0,0 +1,157 @@
+package com.parallelsymmetry.utility.comm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes a byte stream into a memory-mapped ring file so that other local
+ * processes can tail the stream without a copy through the kernel. There must
+ * be only one writer per ring file.
+ * <p>
+ * The file is a little-endian header of {@link #HEADER_SIZE} bytes followed by
+ * a data region of a power of two bytes:
+ * <pre>
+ * offset  0  int   magic number (0x53524E47)
+ * offset  4  int   layout version
+ * offset  8  int   data capacity in bytes
+ * offset 12  int   generation, incremented each time the file is reinitialized
+ * offset 16  long  commit cursor, the sequence number after the last published byte
+ * offset 24  long  reserve cursor, the sequence number after the last byte being written
+ * </pre>
+ * Every byte written has a sequence number equal to the count of bytes written
+ * before it and is stored at data offset <code>sequence &amp; (capacity - 1)</code>.
+ * The reserve cursor is advanced before the data is written and the commit
+ * cursor after, so a reader can detect that the writer overran the bytes it
+ * just copied. The magic number is cleared while the header is rewritten and
+ * readers stop at a generation change.
+ *
+ * @author mvsoder
+ */
+public class SerialRingWriter implements Closeable {
+
+	public static final int MAGIC = 0x53524E47;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 64;
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	static final int MAGIC_OFFSET = 0;
+
+	static final int VERSION_OFFSET = 4;
+
+	static final int CAPACITY_OFFSET = 8;
+
+	static final int GENERATION_OFFSET = 12;
+
+	static final int COMMIT_OFFSET = 16;
+
+	static final int RESERVE_OFFSET = 24;
+
+	static final VarHandle INT = MethodHandles.byteBufferViewVarHandle( int[].class, ByteOrder.LITTLE_ENDIAN );
+
+	static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle( long[].class, ByteOrder.LITTLE_ENDIAN );
+
+	private FileChannel channel;
+
+	private MappedByteBuffer map;
+
+	private int capacity;
+
+	private int mask;
+
+	private long cursor;
+
+	public SerialRingWriter( Path path ) throws IOException {
+		this( path, DEFAULT_CAPACITY );
+	}
+
+	public SerialRingWriter( Path path, int capacity ) throws IOException {
+		if( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) throw new IllegalArgumentException( "Capacity must be a power of two: " + capacity );
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+
+		channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		boolean resume = channel.size() == HEADER_SIZE + capacity;
+		map = channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity );
+		map.order( ByteOrder.LITTLE_ENDIAN );
+
+		// Continue an existing stream so attached readers survive a restart.
+		resume &= map.getInt( MAGIC_OFFSET ) == MAGIC && map.getInt( VERSION_OFFSET ) == VERSION && map.getInt( CAPACITY_OFFSET ) == capacity;
+		if( resume ) {
+			cursor = (long)LONG.getVolatile( map, COMMIT_OFFSET );
+			LONG.setVolatile( map, RESERVE_OFFSET, cursor );
+		} else {
+			// Invalidate the header before changing it so attached readers stop.
+			INT.setVolatile( map, MAGIC_OFFSET, 0 );
+			INT.setVolatile( map, GENERATION_OFFSET, (int)INT.getVolatile( map, GENERATION_OFFSET ) + 1 );
+			map.putInt( VERSION_OFFSET, VERSION );
+			map.putInt( CAPACITY_OFFSET, capacity );
+			LONG.setVolatile( map, COMMIT_OFFSET, 0L );
+			LONG.setVolatile( map, RESERVE_OFFSET, 0L );
+			INT.setRelease( map, MAGIC_OFFSET, MAGIC );
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getGeneration() {
+		return map.getInt( GENERATION_OFFSET );
+	}
+
+	/**
+	 * Get the sequence number after the last published byte.
+	 *
+	 * @return The commit cursor
+	 */
+	public long getCursor() {
+		return cursor;
+	}
+
+	public void write( byte[] buffer ) throws IOException {
+		write( buffer, 0, buffer.length );
+	}
+
+	public void write( byte[] buffer, int offset, int length ) throws IOException {
+		if( map == null ) throw new IOException( "Ring writer closed." );
+		if( length <= 0 ) return;
+
+		long next = cursor + length;
+
+		// Only the newest capacity bytes can be kept.
+		if( length > capacity ) {
+			offset += length - capacity;
+			length = capacity;
+		}
+		long start = next - length;
+
+		LONG.setVolatile( map, RESERVE_OFFSET, next );
+		VarHandle.storeStoreFence();
+
+		int index = (int)(start & mask);
+		int first = Math.min( length, capacity - index );
+		map.put( HEADER_SIZE + index, buffer, offset, first );
+		if( first < length ) map.put( HEADER_SIZE, buffer, offset + first, length - first );
+
+		LONG.setRelease( map, COMMIT_OFFSET, next );
+		cursor = next;
+	}
+
+	@Override
+	public void close() throws IOException {
+		map = null;
+		if( channel != null ) channel.close();
+		channel = null;
+	}
+
+}
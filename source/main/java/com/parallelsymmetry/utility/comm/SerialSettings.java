@@ -8,6 +8,16 @@ import java.util.StringTokenizer;
 
 public class SerialSettings {
 
+	/**
+	 * Hardware flow control in both directions.
+	 */
+	public static final int FLOWCONTROL_RTSCTS = SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_RTSCTS_OUT;
+
+	/**
+	 * Software flow control in both directions.
+	 */
+	public static final int FLOWCONTROL_XONXOFF = SerialPort.FLOWCONTROL_XONXOFF_IN | SerialPort.FLOWCONTROL_XONXOFF_OUT;
+
 	private String name;
 
 	private int baud;
@@ -18,16 +28,23 @@ public class SerialSettings {
 
 	private int stop;
 
+	private int flow;
+
 	public SerialSettings( SerialPort port ) {
-		this( port.getName(), port.getBaudRate(), port.getDataBits(), port.getParity(), port.getStopBits() );
+		this( port.getName(), port.getBaudRate(), port.getDataBits(), port.getParity(), port.getStopBits(), port.getFlowControlMode() );
 	}
 
 	public SerialSettings( String name, int baud, int bits, int parity, int stop ) {
+		this( name, baud, bits, parity, stop, SerialPort.FLOWCONTROL_NONE );
+	}
+
+	public SerialSettings( String name, int baud, int bits, int parity, int stop, int flow ) {
 		this.name = name;
 		this.baud = baud;
 		this.bits = bits;
 		this.parity = parity;
 		this.stop = stop;
+		this.flow = flow;
 	}
 
 	public static final SerialSettings parse( String settings ) throws ParseException {
@@ -41,6 +58,7 @@ public class SerialSettings {
 		int bits = -1;
 		int parity = -1;
 		int stop = -1;
+		int flow = SerialPort.FLOWCONTROL_NONE;
 
 		try {
 			name = tokenizer.nextToken();
@@ -72,7 +90,10 @@ public class SerialSettings {
 			throw new ParseException( "Missing stop bits.", 5 );
 		}
 
-		return new SerialSettings( name, baud, bits, parity, stop );
+		// Flow control is optional.
+		if( tokenizer.hasMoreTokens() ) flow = parseFlow( tokenizer.nextToken() );
+
+		return new SerialSettings( name, baud, bits, parity, stop, flow );
 	}
 
 	public static final int parseBaud( String baud ) throws ParseException {
@@ -127,6 +148,20 @@ public class SerialSettings {
 		throw new ParseException( "Invalid stop bits.", 5 );
 	}
 
+	public static final int parseFlow( String flow ) throws ParseException {
+		flow = flow.toLowerCase();
+
+		if( "n".equals( flow ) || "none".equals( flow ) ) {
+			return SerialPort.FLOWCONTROL_NONE;
+		} else if( "h".equals( flow ) || "rtscts".equals( flow ) ) {
+			return FLOWCONTROL_RTSCTS;
+		} else if( "x".equals( flow ) || "xonxoff".equals( flow ) ) {
+			return FLOWCONTROL_XONXOFF;
+		}
+
+		throw new ParseException( "Invalid flow control.", 6 );
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -147,6 +182,44 @@ public class SerialSettings {
 		return stop;
 	}
 
+	public int getFlow() {
+		return flow;
+	}
+
+	/**
+	 * Check if the device may throttle the data sent to it.
+	 */
+	public boolean isOutboundFlowControl() {
+		return (flow & (SerialPort.FLOWCONTROL_RTSCTS_OUT | SerialPort.FLOWCONTROL_XONXOFF_OUT)) != 0;
+	}
+
+	/**
+	 * Check if the data received from the device may be throttled.
+	 */
+	public boolean isInboundFlowControl() {
+		return (flow & (SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_XONXOFF_IN)) != 0;
+	}
+
+	/**
+	 * Get the number of bits on the line for each character, including the start,
+	 * parity and stop bits.
+	 *
+	 * @return The bits per character
+	 */
+	public double getFrameBits() {
+		double stopBits = stop == SerialPort.STOPBITS_2 ? 2 : stop == SerialPort.STOPBITS_1_5 ? 1.5 : 1;
+		return 1 + bits + (parity == SerialPort.PARITY_NONE ? 0 : 1) + stopBits;
+	}
+
+	/**
+	 * Get the effective number of characters per second at line rate.
+	 *
+	 * @return The bytes per second
+	 */
+	public double getByteRate() {
+		return baud / getFrameBits();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -188,6 +261,13 @@ public class SerialSettings {
 		builder.append( parityString );
 		builder.append( "," );
 		builder.append( stopString );
+		if( flow == FLOWCONTROL_RTSCTS ) {
+			builder.append( ",h" );
+		} else if( flow == FLOWCONTROL_XONXOFF ) {
+			builder.append( ",x" );
+		} else if( flow != SerialPort.FLOWCONTROL_NONE ) {
+			builder.append( ",?" );
+		}
 
 		return builder.toString();
 	}
@@ -196,7 +276,7 @@ public class SerialSettings {
 	public boolean equals( Object object ) {
 		if( !(object instanceof SerialSettings) ) return false;
 		SerialSettings that = (SerialSettings)object;
-		return this.baud == that.baud && this.bits == that.bits && this.parity == that.parity && this.stop == that.stop;
+		return this.baud == that.baud && this.bits == that.bits && this.parity == that.parity && this.stop == that.stop && this.flow == that.flow;
 	}
 
 }
@@ -0,0 +1,153 @@
+package com.parallelsymmetry.utility.comm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a bulk transfer, such as a firmware image, to a serial output paced
+ * by a {@link SerialPacer}. To keep the device receive buffer from being
+ * overrun the rate should be the rate at which the device consumes data and
+ * the burst the number of bytes the device can buffer. File sources are
+ * memory-mapped and written in burst sized chunks.
+ *
+ * @author mvsoder
+ */
+public class SerialTransfer {
+
+	private static final long MAX_MAP_SIZE = 1 << 30;
+
+	private static final int MIN_BURST = 16;
+
+	private OutputStream output;
+
+	private SerialPacer pacer;
+
+	private byte[] chunk;
+
+	private SerialTransferListener listener;
+
+	private long total;
+
+	private long sent;
+
+	private long start;
+
+	private long elapsed;
+
+	/**
+	 * Create a transfer paced to the line rate of the serial settings.
+	 *
+	 * @param output The serial output
+	 * @param settings The port settings
+	 * @param burst The largest burst in bytes or zero if unknown
+	 */
+	public SerialTransfer( OutputStream output, SerialSettings settings, int burst ) {
+		this( output, settings.getByteRate(), burst );
+	}
+
+	/**
+	 * @param output The serial output
+	 * @param rate The sustained rate in bytes per second
+	 * @param burst The largest burst in bytes or zero to use ten milliseconds at the rate
+	 */
+	public SerialTransfer( OutputStream output, double rate, int burst ) {
+		if( burst <= 0 ) burst = Math.max( MIN_BURST, (int)(rate / 100) );
+		this.output = output;
+		this.pacer = new SerialPacer( rate, burst );
+		this.chunk = new byte[burst];
+	}
+
+	public void setListener( SerialTransferListener listener ) {
+		this.listener = listener;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * Get the time spent sending.
+	 *
+	 * @return The elapsed time in nanoseconds
+	 */
+	public long getElapsed() {
+		return start == 0 ? elapsed : System.nanoTime() - start;
+	}
+
+	/**
+	 * Get the achieved throughput.
+	 *
+	 * @return The bytes per second
+	 */
+	public double getThroughput() {
+		long elapsed = getElapsed();
+		return elapsed == 0 ? 0 : (double)sent * TimeUnit.SECONDS.toNanos( 1 ) / elapsed;
+	}
+
+	/**
+	 * Send a region of a file.
+	 *
+	 * @return The number of bytes sent
+	 */
+	public long send( FileChannel channel, long position, long count ) throws IOException {
+		begin( count );
+		try {
+			long offset = 0;
+			while( offset < count ) {
+				long size = Math.min( MAX_MAP_SIZE, count - offset );
+				write( channel.map( FileChannel.MapMode.READ_ONLY, position + offset, size ) );
+				offset += size;
+			}
+		} finally {
+			end();
+		}
+		return sent;
+	}
+
+	/**
+	 * Send the remaining bytes of a buffer, which may be a mapped region.
+	 *
+	 * @return The number of bytes sent
+	 */
+	public long send( ByteBuffer source ) throws IOException {
+		begin( source.remaining() );
+		try {
+			write( source );
+		} finally {
+			end();
+		}
+		return sent;
+	}
+
+	private void begin( long count ) {
+		total = count;
+		sent = 0;
+		elapsed = 0;
+		start = System.nanoTime();
+	}
+
+	private void end() {
+		elapsed = System.nanoTime() - start;
+		start = 0;
+	}
+
+	private void write( ByteBuffer source ) throws IOException {
+		while( source.hasRemaining() ) {
+			int length = Math.min( chunk.length, source.remaining() );
+			source.get( chunk, 0, length );
+			pacer.acquire( length );
+			output.write( chunk, 0, length );
+			output.flush();
+			sent += length;
+			if( listener != null ) listener.transferProgress( this, sent, total );
+		}
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.parallelsymmetry.utility.comm;
+
+public interface SerialTransferListener {
+
+	/**
+	 * Called after each paced chunk is written to the port.
+	 *
+	 * @param transfer The transfer in progress
+	 * @param sent The number of bytes sent so far
+	 * @param total The number of bytes to send
+	 */
+	void transferProgress( SerialTransfer transfer, long sent, long total );
+
+}
@@ -0,0 +1,286 @@
+package com.parallelsymmetry.utility.comm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerialBusSchedulerTest {
+
+	@Test
+	public void testTurnaround() throws Exception {
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", null, null, SerialSettings.parse( "COM3,9600,8,n,1" ) );
+
+		// 3.5 character times at 960 characters per second.
+		assertEquals( 3645834, scheduler.getTurnaround() );
+	}
+
+	@Test
+	public void testEarliestDeadlineFirst() throws Exception {
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", null, null, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice slow = new MockDevice( "slow", 1000, 0 );
+		MockDevice fast = new MockDevice( "fast", 10, 0 );
+		MockDevice urgent = new MockDevice( "urgent", 10, 5 );
+		scheduler.addDevice( slow );
+		scheduler.addDevice( fast );
+		scheduler.addDevice( urgent );
+
+		long now = System.nanoTime();
+		slow.release = now;
+		fast.release = now;
+		urgent.release = now;
+		assertSame( urgent, scheduler.next( now ) );
+
+		urgent.release = now + urgent.getPeriod();
+		assertSame( fast, scheduler.next( now ) );
+
+		fast.release = now + fast.getPeriod();
+		assertSame( slow, scheduler.next( now ) );
+
+		slow.release = now + slow.getPeriod();
+		assertNull( scheduler.next( now ) );
+	}
+
+	@Test
+	public void testPriorityOfDevicesAddedApart() throws Exception {
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", null, null, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice normal = new MockDevice( "normal", 100, 0 );
+		MockDevice urgent = new MockDevice( "urgent", 100, 5 );
+
+		// Stay clear of a period boundary between the two additions.
+		long period = normal.getPeriod();
+		while( Math.floorMod( System.nanoTime(), period ) > period / 2 ) Thread.sleep( 1 );
+		scheduler.addDevice( normal );
+		Thread.sleep( 5 );
+		scheduler.addDevice( urgent );
+
+		assertEquals( normal.getDeadline(), urgent.getDeadline() );
+		assertSame( urgent, scheduler.next( System.nanoTime() ) );
+	}
+
+	@Test
+	public void testPollResponse() throws Exception {
+		MockInputStream input = new MockInputStream( new byte[]{ 1, 3, 2, 0, 42 } );
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+
+			@Override
+			public void flush() {
+				input.respond();
+			}
+
+		};
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, output, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice device = new MockDevice( "device", 10, 0 );
+		scheduler.addDevice( device );
+		long release = System.nanoTime();
+		device.release = release;
+
+		assertTrue( scheduler.poll( device ) );
+		assertArrayEquals( device.getRequest(), output.toByteArray() );
+		assertArrayEquals( new byte[]{ 1, 3, 2, 0, 42 }, device.response );
+		assertEquals( 1, device.getPollCount() );
+		assertEquals( 0, device.getTimeoutCount() );
+		assertTrue( device.getStaleness() >= 0 );
+		assertEquals( release + device.getPeriod(), device.release );
+	}
+
+	@Test
+	public void testPollTimeout() throws Exception {
+		ByteArrayInputStream input = new ByteArrayInputStream( new byte[0] );
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, output, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice device = new MockDevice( "device", 10, 0 );
+		scheduler.addDevice( device );
+
+		assertFalse( scheduler.poll( device ) );
+		assertNull( device.response );
+		assertTrue( device.timedOut );
+		assertEquals( 1, device.getTimeoutCount() );
+		assertEquals( -1, device.getStaleness() );
+	}
+
+	@Test
+	public void testSkipMissedPeriods() throws Exception {
+		ByteArrayInputStream input = new ByteArrayInputStream( new byte[]{ 1 } );
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice device = new MockDevice( "device", 10, 0 );
+		scheduler.addDevice( device );
+		long release = device.release - TimeUnit.SECONDS.toNanos( 1 );
+		device.release = release;
+
+		scheduler.poll( device );
+		assertNull( scheduler.next( System.nanoTime() ) );
+		assertEquals( 0, ( device.release - release ) % device.getPeriod() );
+	}
+
+	@Test
+	public void testLessThanOnePeriodLate() throws Exception {
+		ByteArrayInputStream input = new ByteArrayInputStream( new byte[0] );
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice device = new MockDevice( "device", 10, 0 );
+		scheduler.addDevice( device );
+		device.release -= device.getPeriod() * 3 / 2;
+
+		scheduler.poll( device );
+		assertNull( scheduler.next( System.nanoTime() ) );
+	}
+
+	@Test
+	public void testThrowingDevice() throws Exception {
+		ByteArrayInputStream input = new ByteArrayInputStream( new byte[0] );
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice broken = new MockDevice( "broken", 10, 5 ) {
+
+			@Override
+			protected byte[] getRequest() {
+				throw new IllegalStateException( "Broken device" );
+			}
+
+		};
+		MockDevice device = new MockDevice( "device", 10, 0 );
+		scheduler.addDevice( broken );
+		scheduler.addDevice( device );
+		long now = System.nanoTime();
+		broken.release = now;
+		device.release = now;
+
+		assertSame( broken, scheduler.next( now ) );
+		assertFalse( scheduler.poll( broken ) );
+		assertEquals( 1, broken.getPollCount() );
+		assertEquals( 1, broken.getTimeoutCount() );
+		assertSame( device, scheduler.next( System.nanoTime() ) );
+	}
+
+	@Test
+	public void testThrowingResponseHandler() throws Exception {
+		MockInputStream input = new MockInputStream( new byte[]{ 1, 2, 3 } );
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+
+			@Override
+			public void flush() {
+				input.respond();
+			}
+
+		};
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, output, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		MockDevice broken = new MockDevice( "broken", 10, 0 ) {
+
+			@Override
+			protected void handleResponse( byte[] response, int length ) {
+				throw new IllegalStateException( "Broken handler" );
+			}
+
+		};
+		scheduler.addDevice( broken );
+
+		assertFalse( scheduler.poll( broken ) );
+		assertEquals( 1, broken.getTimeoutCount() );
+		assertEquals( -1, broken.getStaleness() );
+		assertNull( scheduler.next( System.nanoTime() ) );
+	}
+
+	@Test
+	public void testSchedulingAfterPortFailure() throws Exception {
+		MockInputStream response = new MockInputStream( new byte[]{ 1, 3, 2, 0, 42 } );
+		FilterInputStream input = new FilterInputStream( response ) {
+
+			private boolean failed;
+
+			@Override
+			public int available() throws IOException {
+				if( !failed ) {
+					failed = true;
+					throw new IOException( "Port failure" );
+				}
+				return super.available();
+			}
+
+		};
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+
+			@Override
+			public void flush() {
+				response.respond();
+			}
+
+		};
+		SerialBusScheduler scheduler = new SerialBusScheduler( "bus", input, output, SerialSettings.parse( "COM3,115200,8,n,1" ) );
+		CountDownLatch responded = new CountDownLatch( 1 );
+		MockDevice device = new MockDevice( "device", 10, 0 ) {
+
+			@Override
+			protected void handleResponse( byte[] response, int length ) {
+				super.handleResponse( response, length );
+				responded.countDown();
+			}
+
+		};
+		scheduler.addDevice( device );
+
+		scheduler.startAgent();
+		try {
+			assertTrue( responded.await( 5, TimeUnit.SECONDS ) );
+		} finally {
+			scheduler.stopAgent();
+		}
+		assertArrayEquals( new byte[]{ 1, 3, 2, 0, 42 }, device.response );
+	}
+
+	/**
+	 * Holds the response until the request is sent, so it is not discarded as a
+	 * late response.
+	 */
+	private static class MockInputStream extends ByteArrayInputStream {
+
+		private boolean responding;
+
+		public MockInputStream( byte[] response ) {
+			super( response );
+		}
+
+		public void respond() {
+			responding = true;
+		}
+
+		@Override
+		public synchronized int available() {
+			return responding ? super.available() : 0;
+		}
+
+	}
+
+	private static class MockDevice extends SerialBusDevice {
+
+		private byte[] response;
+
+		private boolean timedOut;
+
+		public MockDevice( String name, long period, int priority ) {
+			super( name, period, priority, 5 );
+		}
+
+		@Override
+		protected byte[] getRequest() {
+			return new byte[]{ 1, 3, 0, 0, 0, 1 };
+		}
+
+		@Override
+		protected void handleResponse( byte[] response, int length ) {
+			this.response = Arrays.copyOf( response, length );
+		}
+
+		@Override
+		protected void handleTimeout() {
+			timedOut = true;
+		}
+
+	}
+
+}
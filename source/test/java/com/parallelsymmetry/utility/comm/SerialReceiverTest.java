@@ -0,0 +1,290 @@
+package com.parallelsymmetry.utility.comm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerialReceiverTest {
+
+	@TempDir
+	Path folder;
+
+	@Test
+	public void testReadFromSecondThread() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1" ), null, null, false );
+		receiver.start();
+		try {
+			InputStream input = receiver.getInputStream();
+
+			// More than the pipe holds so the backlog has to be resumed by the reader.
+			port.add( 300 );
+			receiver.signal();
+			Thread first = new Thread( () -> {
+				try {
+					readFully( input, 300 );
+				} catch( IOException exception ) {
+					throw new RuntimeException( exception );
+				}
+			} );
+			first.start();
+			first.join( 5000 );
+			assertFalse( first.isAlive() );
+
+			port.add( 10 );
+			receiver.signal();
+			assertEquals( 10, readFully( input, 10 ) );
+		} finally {
+			receiver.stop();
+		}
+	}
+
+	@Test
+	public void testDrainBeforeSecondThreadReads() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1" ), null, null, false );
+		InputStream input = receiver.getInputStream();
+
+		port.add( 10 );
+		receiver.drain();
+		Thread first = new Thread( () -> {
+			try {
+				readFully( input, 10 );
+			} catch( IOException exception ) {
+				throw new RuntimeException( exception );
+			}
+		} );
+		first.start();
+		first.join( 5000 );
+		assertFalse( first.isAlive() );
+
+		// The first reader is gone before the new data is drained.
+		port.add( 10 );
+		receiver.drain();
+		assertEquals( 10, input.available() );
+		assertEquals( 10, readFully( input, 10 ) );
+	}
+
+	@Test
+	public void testTransientFailure() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1" ), null, null, false );
+		receiver.start();
+		try {
+			InputStream input = receiver.getInputStream();
+
+			port.fail();
+			receiver.signal();
+			assertThrows( IOException.class, () -> input.read() );
+
+			port.add( 10 );
+			receiver.signal();
+			assertEquals( 10, readFully( input, 10 ) );
+		} finally {
+			receiver.stop();
+		}
+		assertEquals( -1, receiver.getInputStream().read() );
+	}
+
+	@Test
+	public void testBacklog() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1" ), null, null, false );
+		InputStream input = receiver.getInputStream();
+
+		port.add( 300 );
+		receiver.drain();
+		assertEquals( SerialReceiver.BUFFER_SIZE, input.available() );
+		assertEquals( 300 - SerialReceiver.BUFFER_SIZE, port.available() );
+		assertFalse( receiver.isThrottled() );
+
+		assertEquals( SerialReceiver.BUFFER_SIZE, input.read( new byte[SerialReceiver.BUFFER_SIZE] ) );
+		receiver.drain();
+		assertEquals( 300 - SerialReceiver.BUFFER_SIZE, input.available() );
+		assertEquals( 0, port.available() );
+	}
+
+	@Test
+	public void testHardwareFlowControl() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		List<Boolean> rts = new ArrayList<>();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1,h" ), rts::add, null, false );
+		InputStream input = receiver.getInputStream();
+
+		// Below the high water mark.
+		port.add( SerialReceiver.HIGH_WATER - 1 );
+		receiver.drain();
+		assertFalse( receiver.isThrottled() );
+		assertEquals( 0, receiver.getStallTime() );
+
+		port.add( 1 );
+		receiver.drain();
+		assertTrue( receiver.isThrottled() );
+		assertEquals( List.of( false ), rts );
+
+		// Between the marks the device stays held off.
+		input.read( new byte[SerialReceiver.HIGH_WATER - SerialReceiver.LOW_WATER - 1] );
+		receiver.drain();
+		assertTrue( receiver.isThrottled() );
+
+		input.read();
+		receiver.drain();
+		assertFalse( receiver.isThrottled() );
+		assertEquals( List.of( false, true ), rts );
+		assertTrue( receiver.getStallTime() > 0 );
+	}
+
+	@Test
+	public void testSoftwareFlowControl() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, output, SerialSettings.parse( "COM3,9600,8,n,1,x" ), null, null, false );
+		InputStream input = receiver.getInputStream();
+
+		port.add( SerialReceiver.BUFFER_SIZE );
+		receiver.drain();
+		assertTrue( receiver.isThrottled() );
+
+		input.read( new byte[SerialReceiver.BUFFER_SIZE] );
+		receiver.drain();
+		assertFalse( receiver.isThrottled() );
+		assertArrayEquals( new byte[]{ SerialReceiver.XOFF, SerialReceiver.XON }, output.toByteArray() );
+	}
+
+	@Test
+	public void testNoFlowControl() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, output, SerialSettings.parse( "COM3,9600,8,n,1" ), null, null, false );
+
+		port.add( SerialReceiver.BUFFER_SIZE );
+		receiver.drain();
+		assertFalse( receiver.isThrottled() );
+		assertEquals( 0, output.size() );
+	}
+
+	@Test
+	public void testStallClosedOnStop() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1,h" ), ( value ) -> {}, null, false );
+
+		port.add( SerialReceiver.BUFFER_SIZE );
+		receiver.drain();
+		assertTrue( receiver.isThrottled() );
+
+		receiver.stop();
+		long stall = receiver.getStallTime();
+		assertTrue( stall > 0 );
+		assertFalse( receiver.isThrottled() );
+		Thread.sleep( 10 );
+		assertEquals( stall, receiver.getStallTime() );
+	}
+
+	@Test
+	public void testExportWhenPipeNotRead() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		List<Boolean> rts = new ArrayList<>();
+		try( SerialRingWriter export = new SerialRingWriter( folder.resolve( "ring" ), 1024 ) ) {
+			SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1,h" ), rts::add, export, true );
+
+			for( int index = 0; index < 4; index++ ) {
+				port.add( 250 );
+				receiver.drain();
+			}
+
+			assertEquals( 1000, export.getCursor() );
+			assertEquals( 0, port.available() );
+			assertEquals( SerialReceiver.BUFFER_SIZE, receiver.getInputStream().available() );
+			assertEquals( 1000 - SerialReceiver.BUFFER_SIZE, receiver.getDropped() );
+			assertFalse( receiver.isThrottled() );
+			assertTrue( rts.isEmpty() );
+		}
+	}
+
+	@Test
+	public void testExportKeepsFlowControl() throws Exception {
+		MockPortInputStream port = new MockPortInputStream();
+		List<Boolean> rts = new ArrayList<>();
+		try( SerialRingWriter export = new SerialRingWriter( folder.resolve( "ring" ), 1024 ) ) {
+			SerialReceiver receiver = new SerialReceiver( "receiver", port, new ByteArrayOutputStream(), SerialSettings.parse( "COM3,9600,8,n,1,h" ), rts::add, export, false );
+			InputStream input = receiver.getInputStream();
+
+			port.add( 300 );
+			receiver.drain();
+			assertEquals( SerialReceiver.BUFFER_SIZE, export.getCursor() );
+			assertEquals( 300 - SerialReceiver.BUFFER_SIZE, port.available() );
+			assertTrue( receiver.isThrottled() );
+			assertEquals( List.of( false ), rts );
+
+			// The export only advances as the input stream is read.
+			assertEquals( SerialReceiver.BUFFER_SIZE, readFully( input, SerialReceiver.BUFFER_SIZE ) );
+			receiver.drain();
+			assertEquals( 300, export.getCursor() );
+			assertFalse( receiver.isThrottled() );
+			assertEquals( 300 - SerialReceiver.BUFFER_SIZE, readFully( input, 300 - SerialReceiver.BUFFER_SIZE ) );
+			assertEquals( 0, receiver.getDropped() );
+		}
+	}
+
+	private static int readFully( InputStream input, int count ) throws IOException {
+		byte[] buffer = new byte[count];
+		int offset = 0;
+		while( offset < count ) {
+			int read = input.read( buffer, offset, count - offset );
+			if( read < 0 ) break;
+			offset += read;
+		}
+		return offset;
+	}
+
+	/**
+	 * Stands in for the port input stream that the test can add data to.
+	 */
+	private static class MockPortInputStream extends InputStream {
+
+		private int available;
+
+		private boolean failing;
+
+		public synchronized void add( int count ) {
+			available += count;
+		}
+
+		public synchronized void fail() {
+			failing = true;
+		}
+
+		@Override
+		public synchronized int available() throws IOException {
+			if( failing ) {
+				failing = false;
+				throw new IOException( "Port failure" );
+			}
+			return available;
+		}
+
+		@Override
+		public synchronized int read() {
+			if( available == 0 ) return -1;
+			available--;
+			return 0;
+		}
+
+		@Override
+		public synchronized int read( byte[] buffer, int offset, int length ) {
+			int count = Math.min( length, available );
+			available -= count;
+			return count;
+		}
+
+	}
+
+}
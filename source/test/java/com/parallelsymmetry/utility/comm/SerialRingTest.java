@@ -0,0 +1,130 @@
+package com.parallelsymmetry.utility.comm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerialRingTest {
+
+	@TempDir
+	Path folder;
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		Path path = folder.resolve( "ring" );
+		try( SerialRingWriter writer = new SerialRingWriter( path, 16 ); SerialRingReader reader = new SerialRingReader( path ) ) {
+			byte[] buffer = new byte[16];
+			assertEquals( 0, reader.read( buffer ) );
+
+			writer.write( new byte[]{ 1, 2, 3 } );
+			assertEquals( 3, writer.getCursor() );
+			assertEquals( 3, reader.available() );
+			assertEquals( 3, reader.read( buffer ) );
+			assertArrayEquals( new byte[]{ 1, 2, 3 }, Arrays.copyOf( buffer, 3 ) );
+			assertEquals( 3, reader.getPosition() );
+			assertEquals( 0, reader.read( buffer ) );
+		}
+	}
+
+	@Test
+	public void testWrap() throws Exception {
+		Path path = folder.resolve( "ring" );
+		try( SerialRingWriter writer = new SerialRingWriter( path, 8 ); SerialRingReader reader = new SerialRingReader( path ) ) {
+			byte[] buffer = new byte[8];
+			writer.write( new byte[]{ 1, 2, 3, 4, 5, 6 } );
+			assertEquals( 6, reader.read( buffer ) );
+
+			writer.write( new byte[]{ 7, 8, 9, 10, 11 } );
+			assertEquals( 5, reader.read( buffer ) );
+			assertArrayEquals( new byte[]{ 7, 8, 9, 10, 11 }, Arrays.copyOf( buffer, 5 ) );
+			assertEquals( 0, reader.getLost() );
+		}
+	}
+
+	@Test
+	public void testOverrun() throws Exception {
+		Path path = folder.resolve( "ring" );
+		try( SerialRingWriter writer = new SerialRingWriter( path, 4 ); SerialRingReader reader = new SerialRingReader( path ) ) {
+			byte[] buffer = new byte[8];
+			writer.write( new byte[]{ 1, 2, 3 } );
+			writer.write( new byte[]{ 4, 5, 6 } );
+
+			assertEquals( 4, reader.read( buffer ) );
+			assertArrayEquals( new byte[]{ 3, 4, 5, 6 }, Arrays.copyOf( buffer, 4 ) );
+			assertEquals( 2, reader.getLost() );
+			assertEquals( 6, reader.getPosition() );
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		Path path = folder.resolve( "ring" );
+		try( SerialRingWriter writer = new SerialRingWriter( path, 8 ) ) {
+			writer.write( new byte[]{ 1, 2, 3 } );
+		}
+		try( SerialRingWriter writer = new SerialRingWriter( path, 8 ) ) {
+			assertEquals( 3, writer.getCursor() );
+			assertEquals( 1, writer.getGeneration() );
+		}
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		Path path = folder.resolve( "ring" );
+		try( SerialRingWriter writer = new SerialRingWriter( path, 8 ); SerialRingReader reader = new SerialRingReader( path ) ) {
+			writer.write( new byte[]{ 1, 2, 3 } );
+			assertEquals( 3, reader.read( new byte[8] ) );
+
+			// A different capacity reinitializes the file under the attached reader.
+			try( SerialRingWriter other = new SerialRingWriter( path, 16 ) ) {
+				assertEquals( reader.getGeneration() + 1, other.getGeneration() );
+				other.write( new byte[]{ 4 } );
+				assertThrows( IOException.class, () -> reader.read( new byte[8] ) );
+				assertThrows( IOException.class, reader::available );
+
+				try( SerialRingReader again = new SerialRingReader( path ) ) {
+					assertEquals( 16, again.getCapacity() );
+					assertEquals( other.getGeneration(), again.getGeneration() );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws Exception {
+		Path path = folder.resolve( "ring" );
+		Files.write( path, new byte[ SerialRingWriter.HEADER_SIZE ] );
+		assertThrows( IOException.class, () -> new SerialRingReader( path ) );
+		assertThrows( IllegalArgumentException.class, () -> new SerialRingWriter( path, 10 ) );
+	}
+
+	@Test
+	public void testInvalidCapacity() throws Exception {
+		Path path = folder.resolve( "ring" );
+		ByteBuffer header = ByteBuffer.allocate( SerialRingWriter.HEADER_SIZE + 16 ).order( ByteOrder.LITTLE_ENDIAN );
+		header.putInt( SerialRingWriter.MAGIC_OFFSET, SerialRingWriter.MAGIC );
+		header.putInt( SerialRingWriter.VERSION_OFFSET, SerialRingWriter.VERSION );
+
+		header.putInt( SerialRingWriter.CAPACITY_OFFSET, 12 );
+		Files.write( path, header.array() );
+		assertThrows( IOException.class, () -> new SerialRingReader( path ) );
+
+		header.putInt( SerialRingWriter.CAPACITY_OFFSET, -16 );
+		Files.write( path, header.array() );
+		assertThrows( IOException.class, () -> new SerialRingReader( path ) );
+
+		// Larger than the data in the file.
+		header.putInt( SerialRingWriter.CAPACITY_OFFSET, 32 );
+		Files.write( path, header.array() );
+		assertThrows( IOException.class, () -> new SerialRingReader( path ) );
+	}
+
+}
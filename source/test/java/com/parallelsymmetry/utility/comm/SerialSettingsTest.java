@@ -178,6 +178,31 @@ public class SerialSettingsTest {
 		assertNull( settings );
 	}
 
+	@Test
+	public void testParseFlow() throws Exception {
+		SerialSettings settings = SerialSettings.parse( "COM3,9600,8,n,1" );
+		assertEquals( SerialPort.FLOWCONTROL_NONE, settings.getFlow() );
+
+		settings = SerialSettings.parse( "COM3,9600,8,n,1,h" );
+		assertEquals( SerialSettings.FLOWCONTROL_RTSCTS, settings.getFlow() );
+		assertTrue( settings.isInboundFlowControl() );
+		assertTrue( settings.isOutboundFlowControl() );
+
+		settings = SerialSettings.parse( "COM3,9600,8,n,1,XonXoff" );
+		assertEquals( SerialSettings.FLOWCONTROL_XONXOFF, settings.getFlow() );
+
+		settings = SerialSettings.parse( "COM3,9600,8,n,1,n" );
+		assertFalse( settings.isInboundFlowControl() );
+		assertFalse( settings.isOutboundFlowControl() );
+
+		try {
+			SerialSettings.parse( "COM3,9600,8,n,1,bad" );
+			fail( "ParseException should have been thrown." );
+		} catch( ParseException exception ) {
+			assertEquals( 6, exception.getErrorOffset() );
+		}
+	}
+
 	@Test
 	public void testToString() throws Exception {
 		String settings;
@@ -192,6 +217,19 @@ public class SerialSettingsTest {
 		assertEquals( settings, SerialSettings.parse( settings ).toString() );
 		settings = "COM3,14400,8,s,1";
 		assertEquals( settings, SerialSettings.parse( settings ).toString() );
+		settings = "COM3,115200,8,n,1,h";
+		assertEquals( settings, SerialSettings.parse( settings ).toString() );
+		settings = "COM3,115200,8,n,1,x";
+		assertEquals( settings, SerialSettings.parse( settings ).toString() );
+	}
+
+	@Test
+	public void testByteRate() throws Exception {
+		assertEquals( 10, SerialSettings.parse( "COM3,9600,8,n,1" ).getFrameBits() );
+		assertEquals( 960, SerialSettings.parse( "COM3,9600,8,n,1" ).getByteRate() );
+		assertEquals( 12, SerialSettings.parse( "COM3,9600,8,e,2" ).getFrameBits() );
+		assertEquals( 800, SerialSettings.parse( "COM3,9600,8,e,2" ).getByteRate() );
+		assertEquals( 7.5, SerialSettings.parse( "COM3,300,5,n,1.5" ).getFrameBits() );
 	}
 
 	@Test
@@ -199,11 +237,13 @@ public class SerialSettingsTest {
 		SerialSettings settings1 = SerialSettings.parse( "COM3,9600,8,n,1" );
 		SerialSettings settings2 = SerialSettings.parse( "COM3,9600,8,n,1" );
 		SerialSettings settings3 = SerialSettings.parse( "COM3,19200,8,n,1" );
+		SerialSettings settings4 = SerialSettings.parse( "COM3,9600,8,n,1,h" );
 
 		assertEquals( settings1, settings2 );
 		assertEquals( settings2, settings1 );
 		assertNotEquals( settings1, settings3 );
 		assertNotEquals( settings3, settings1 );
+		assertNotEquals( settings1, settings4 );
 	}
 
 }
@@ -0,0 +1,86 @@
+package com.parallelsymmetry.utility.comm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerialTransferTest {
+
+	@TempDir
+	Path folder;
+
+	@Test
+	public void testPacerDelay() throws Exception {
+		// 1000 bytes per second with a 100 byte burst.
+		SerialPacer pacer = new SerialPacer( 1000, 100 );
+		long start = System.nanoTime();
+
+		assertEquals( 0, pacer.delay( 100, start ) );
+		assertEquals( 50_000_000, pacer.delay( 50, start ) );
+		assertEquals( 50_000_000, pacer.delay( 50, start + 50_000_000 ) );
+
+		// The bucket never fills past the burst size.
+		assertEquals( 0, pacer.delay( 100, start + 10_000_000_000L ) );
+		assertEquals( 1_000_000, pacer.delay( 1, start + 10_000_000_000L ) );
+	}
+
+	@Test
+	public void testSendBuffer() throws Exception {
+		byte[] data = new byte[1000];
+		for( int index = 0; index < data.length; index++ ) data[index] = (byte)index;
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialTransfer transfer = new SerialTransfer( output, 1e9, 64 );
+		List<Long> progress = new ArrayList<>();
+		transfer.setListener( ( source, sent, total ) -> {
+			assertEquals( 1000, total );
+			progress.add( sent );
+		} );
+
+		assertEquals( 1000, transfer.send( ByteBuffer.wrap( data ) ) );
+		assertArrayEquals( data, output.toByteArray() );
+		assertEquals( 16, progress.size() );
+		assertEquals( 64, progress.get( 0 ) );
+		assertEquals( 1000, progress.get( 15 ) );
+		assertTrue( transfer.getThroughput() > 0 );
+	}
+
+	@Test
+	public void testSendAtDeviceRate() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialTransfer transfer = new SerialTransfer( output, 10000, 100 );
+
+		// The first burst is free, the remaining 500 bytes take 50 milliseconds.
+		assertEquals( 600, transfer.send( ByteBuffer.wrap( new byte[600] ) ) );
+		assertTrue( transfer.getElapsed() >= TimeUnit.MILLISECONDS.toNanos( 50 ) );
+		assertTrue( transfer.getThroughput() <= 12000 );
+	}
+
+	@Test
+	public void testSendFileRegion() throws Exception {
+		byte[] data = new byte[300];
+		for( int index = 0; index < data.length; index++ ) data[index] = (byte)index;
+		Path path = folder.resolve( "image.bin" );
+		Files.write( path, data );
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerialTransfer transfer = new SerialTransfer( output, SerialSettings.parse( "COM3,115200,8,n,1" ), 0 );
+		try( FileChannel channel = FileChannel.open( path ) ) {
+			assertEquals( 200, transfer.send( channel, 100, 200 ) );
+		}
+		assertArrayEquals( Arrays.copyOfRange( data, 100, 300 ), output.toByteArray() );
+		assertEquals( 200, transfer.getSent() );
+	}
+
+}